@@ -12,26 +12,21 @@ import org.springframework.batch.core.configuration.annotation.JobBuilderFactory
 import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
 import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.tasklet.SystemCommandTasklet;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.database.JdbcCursorItemReader;
 import org.springframework.batch.item.file.FlatFileItemReader;
 import org.springframework.batch.item.file.FlatFileItemWriter;
-import org.springframework.batch.item.file.LineMapper;
-import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.PathResource;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import com.jorge.model.User;
 import com.jorge.processor.UserProcessorIncrementAge;
@@ -54,6 +49,12 @@ public class BatchConfig {
 	@Autowired
 	private JobLauncher jobLauncher;
 	
+	@Autowired
+	private JobRepository jobRepository;
+	
+	// Commit interval of step2 (job2)
+	public static final int STEP2_CHUNK_SIZE = 1;
+	
 
 	/*****************
 	 * Jobs and Steps*
@@ -97,16 +98,47 @@ public class BatchConfig {
 		.build();
 	}
 		
-	//Define the job1 bean that will execute step1
+	/**
+	 * Running independent steps at the same time
+	 * 
+	 * job1 is declared as a dependency DAG of steps (see StepDag). step1 and step3 don't depend on each other, so
+	 * they run at the same time on dagTaskExecutor() and the job takes as long as the slowest of them, instead of
+	 * the sum of both. Each step starts as soon as its own dependencies are COMPLETED. A step which needs them both
+	 * would be declared like this:
+	 * 		dag.step(step4(), step1(), step3());
+	 * 
+	 * CriticalPathListener adds the critical path to the exit description of the job execution
+	 * 
+	 */
+	@Bean
+	public StepDag job1Dag(){
+		return new StepDag("job1Dag")
+		.step(step1())
+		//.step(step2()) // If we try to execute step2() this way, we get this error:
+						 // nested exception is java.lang.IllegalArgumentException: Path must not be null
+						 // It means it can't read parameter "file=CSV/input_data.txt", so in reader method csvFilePath would be null and crash
+		.step(step3()); // It executes public SystemCommandTasklet task1() below (create text.txt file in /home/jorge)
+	}
+	
+	// Bounded pool for the steps of a DAG that run at the same time
+	@Bean
+	public ThreadPoolTaskExecutor dagTaskExecutor(){
+		ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+		
+		taskExecutor.setCorePoolSize(4);
+		taskExecutor.setMaxPoolSize(4);
+		taskExecutor.setThreadNamePrefix("dag-");
+		
+		return taskExecutor;
+	}
+	
+	//Define the job1 bean that will execute the job1Dag steps
 	@Bean
 	public Job job1(){
 		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: Starting job1 in BatchConfig.java");
 		return jobs.get("job1")
-		.start(step1())
-		//.next(step2()) // This is to execute more than one step. If we try to execute step2() this way, we get this error:
-						 // nested exception is java.lang.IllegalArgumentException: Path must not be null
-						 // It means it can't read parameter "file=CSV/input_data.txt", so in reader method csvFilePath would be null and crash
-		.next(step3()) // It executes public SystemCommandTasklet task1() below (create text.txt file in /home/jorge)
+		.start(job1Dag().toStep(jobRepository, dagTaskExecutor()))
+		.listener(new CriticalPathListener(job1Dag()))
 		.build();
 	}
 	
@@ -191,31 +223,11 @@ public class BatchConfig {
 	 * 
 	 * 
 	 */
-	// This method generates an User object from a line in the CSV file
-	private LineMapper<User> lineMapper() {
-		DefaultLineMapper<User> lineMapper = new DefaultLineMapper<User>();
-		DelimitedLineTokenizer lineTokenizer = new DelimitedLineTokenizer();
-		
-		lineTokenizer.setNames(new String[]{"firstName","age"});
-		lineTokenizer.setIncludedFields(new int[]{0,1});
-		lineMapper.setLineTokenizer(lineTokenizer);
-		
-		BeanWrapperFieldSetMapper<User> fieldSetMapper = new
-		BeanWrapperFieldSetMapper<User>();
-		
-		fieldSetMapper.setTargetType(User.class);
-		lineMapper.setFieldSetMapper(fieldSetMapper);
-		
-		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: generating an User object from a line in the CSV file");
-		
-		return lineMapper;
-	}
-	
 	/**
 	 *  READ/PROCESS/WRITE STEP FOR FILES. Comment other reader methods
 	 *  
-	 *  This will read a CSV file (whose path is the file path of the CSV file), and use the previously
-	 *  defined LineMapper object to generate users
+	 *  This will read a CSV file (whose path is the file path of the CSV file), and use a LineMapper object
+	 *  to generate users (see UserItems.csvReader())
 	 *  
 	 *  FlatFileItemWriter<User> writer method needs this reader method to write an output file
 	 *  
@@ -227,13 +239,8 @@ public class BatchConfig {
 	@StepScope // Necessary to allow to access the job parameters. Otherwise, they are executed too early in the job initialization process
 	//@Value("#{jobParameters[file]}")
 	public FlatFileItemReader<User> reader(@Value("#{jobParameters[file]}") String csvFilePath) {
-		FlatFileItemReader<User> reader = new FlatFileItemReader<User>();
-		
-		reader.setLineMapper(lineMapper());
-		reader.setResource(new PathResource(csvFilePath));
-		//reader.setResource(new PathResource("CSV/input_data.txt"));
-		reader.setLinesToSkip(1);
-		reader.setEncoding("utf-8");
+		FlatFileItemReader<User> reader = UserItems.csvReader(new PathResource(csvFilePath));
+		//FlatFileItemReader<User> reader = UserItems.csvReader(new PathResource("CSV/input_data.txt"));
 		
 		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: reading a CSV file and use the previously defined LineMapper object to generate users");
 		
@@ -258,13 +265,8 @@ public class BatchConfig {
 	/*@Bean
 	@StepScope
 	public StaxEventItemReader<User> reader(@Value("#{jobParameters[file]}") String xmlFilePath) {
-		StaxEventItemReader<User> reader = new StaxEventItemReader<User>();
-		
-		//reader.setResource(new PathResource(xmlFilePath));
-		reader.setResource(new PathResource("CSV/output_data.txt"));
-		reader.setFragmentRootElementName("person");XStreamMarshaller marshaller = new XStreamMarshaller();
-		marshaller.setAliases(Collections.singletonMap("person", User.class));
-		reader.setUnmarshaller(marshaller);
+		//StaxEventItemReader<User> reader = UserItems.xmlReader(new PathResource(xmlFilePath));
+		StaxEventItemReader<User> reader = UserItems.xmlReader(new PathResource("CSV/output_data.txt"));
 		
 		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: read an XML file and use the previously defined LineMapper object to generate users");
 		
@@ -288,11 +290,7 @@ public class BatchConfig {
 	@Bean
 	@StepScope
 	public JdbcCursorItemReader<User> reader() {
-		JdbcCursorItemReader<User> reader = new JdbcCursorItemReader<User>();
-		
-		reader.setDataSource(dataSource());
-		reader.setSql("SELECT first_name, age FROM user");
-		reader.setRowMapper(new BeanPropertyRowMapper<User>(User.class));
+		JdbcCursorItemReader<User> reader = UserItems.dbReader(dataSource(), "user");
 		
 		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: reading from a database and writing in a file");
 		
@@ -312,14 +310,7 @@ public class BatchConfig {
 	/*@Bean
 	@StepScope // Necessary to allow to access the job parameters. Otherwise, they are executed too early in the job initialization process
 	public JdbcBatchItemWriter<User> writer(){
-		JdbcBatchItemWriter<User> writer = new JdbcBatchItemWriter<User>();
-		
-		writer.setDataSource(dataSource());
-		writer.setSql("INSERT INTO user (first_name, age) " + "VALUES ( :firstName, :age)");
-		
-		ItemSqlParameterSourceProvider<User> paramProvider = new BeanPropertyItemSqlParameterSourceProvider<User>();
-		
-		writer.setItemSqlParameterSourceProvider(paramProvider);
+		JdbcBatchItemWriter<User> writer = UserItems.dbWriter(dataSource(), "user");
 		
 		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: writing age increment in DB");
 		
@@ -346,19 +337,7 @@ public class BatchConfig {
 	@Bean
 	@StepScope
 	public FlatFileItemWriter<User> writer(@Value("#{jobParameters[fileOut]}") String csvFilePath) {
-		BeanWrapperFieldExtractor<User> fieldExtractor = new BeanWrapperFieldExtractor<User>();
-		
-		fieldExtractor.setNames(new String[]{"firstName","age"});
-		
-		DelimitedLineAggregator<User> lineAggregator = new DelimitedLineAggregator<User>();
-		
-		lineAggregator.setDelimiter(",");
-		lineAggregator.setFieldExtractor(fieldExtractor);
-		
-		FlatFileItemWriter<User> writer = new FlatFileItemWriter<User>();
-		
-		writer.setLineAggregator(lineAggregator);
-		writer.setResource(new PathResource(csvFilePath));
+		FlatFileItemWriter<User> writer = UserItems.csvWriter(new PathResource(csvFilePath));
 		
 		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: storing data in an output file");
 		
@@ -371,7 +350,7 @@ public class BatchConfig {
 		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: Starting step2 in BatchConfig.java");
 		
 		return steps.get("step2")
-		.<User,User>chunk(1) // Allows the data to be processed and saved by groups (in chunks). This is more efficient for large sets of data
+		.<User,User>chunk(STEP2_CHUNK_SIZE) // Allows the data to be processed and saved by groups (in chunks). This is more efficient for large sets of data
 		//.reader(reader(null))
 		.reader(reader()) // JdbcCursorItemReader<User> reader method. Comment other reader methods
 		.processor(processor())
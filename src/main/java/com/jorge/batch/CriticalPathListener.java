@@ -0,0 +1,35 @@
+package com.jorge.batch;
+
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobExecutionListener;
+
+/**
+ * Recording the critical path of a job declared as a StepDag
+ *
+ * When the job finishes, the critical path (the chain of dependent steps that set the wall-clock time of the job)
+ * is added to the exit description of the job execution, so it is saved in the job repository together with the
+ * rest of the execution record (BATCH_JOB_EXECUTION.EXIT_MESSAGE):
+ * 		COMPLETED: critical path: step1 (120 ms) -> step4 (30 ms) = 150 ms
+ *
+ */
+public class CriticalPathListener implements JobExecutionListener {
+
+	private final StepDag dag;
+
+	public CriticalPathListener(StepDag dag){
+		this.dag = dag;
+	}
+
+	public void beforeJob(JobExecution jobExecution) {
+	}
+
+	public void afterJob(JobExecution jobExecution) {
+		String criticalPath = "critical path: " + dag.describeCriticalPath(jobExecution.getStepExecutions());
+
+		ExitStatus exitStatus = jobExecution.getExitStatus();
+		jobExecution.setExitStatus(exitStatus.addExitDescription(criticalPath));
+
+		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: " + dag.getName() + " " + criticalPath);
+	}
+}
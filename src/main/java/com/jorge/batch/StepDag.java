@@ -0,0 +1,299 @@
+package com.jorge.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobInterruptedException;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.UnexpectedJobExecutionException;
+import org.springframework.batch.core.job.SimpleStepHandler;
+import org.springframework.batch.core.job.StepHandler;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.AbstractStep;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+/**
+ * Declaring a job as a dependency DAG of steps
+ *
+ * Each step is registered together with the steps it depends on:
+ * 		StepDag dag = new StepDag("job1Dag");
+ * 		dag.step(step1());
+ * 		dag.step(step3());
+ * 		dag.step(step4(), step1(), step3());
+ *
+ * toStep() turns the DAG into a single step which is the job's only step:
+ * 		jobs.get("job1").start(dag.toStep(jobRepository, taskExecutor)).build();
+ *
+ * Every step is started on the TaskExecutor as soon as all its own dependencies are COMPLETED, so steps with
+ * no dependency between them run at the same time (as many as the TaskExecutor allows), and a step never waits
+ * for a step it doesn't depend on. A step with several dependencies is a join point.
+ *
+ * The steps are executed like the steps of a flow (with a StepHandler), so Spring Batch keeps its usual semantics:
+ * 		- If a step fails, no more steps are started, the running ones are waited for, and the job ends as FAILED
+ * 		- When a failed job instance is restarted, the COMPLETED steps are skipped and only the others run again
+ *
+ */
+public class StepDag {
+
+	private final String name;
+
+	// Step name -> step, in declaration order
+	private final Map<String, Step> steps = new LinkedHashMap<String, Step>();
+
+	// Step name -> names of the steps it depends on
+	private final Map<String, Set<String>> dependencies = new LinkedHashMap<String, Set<String>>();
+
+	public StepDag(String name){
+		this.name = name;
+	}
+
+	// Register a step and the steps it depends on. Dependencies have to be registered before, so there can't be cycles
+	public StepDag step(Step step, Step... dependsOn){
+		if(steps.containsKey(step.getName())){
+			throw new IllegalArgumentException("Step " + step.getName() + " is already registered in DAG " + name);
+		}
+
+		Set<String> stepDependencies = new LinkedHashSet<String>();
+		for(Step dependency : dependsOn){
+			if(!steps.containsKey(dependency.getName())){
+				throw new IllegalArgumentException("Step " + step.getName() + " depends on " + dependency.getName() + ", which is not registered in DAG " + name);
+			}
+			stepDependencies.add(dependency.getName());
+		}
+
+		steps.put(step.getName(), step);
+		dependencies.put(step.getName(), stepDependencies);
+
+		return this;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	// Build the step that runs the DAG: every step is started on taskExecutor when its dependencies are COMPLETED
+	public Step toStep(JobRepository jobRepository, TaskExecutor taskExecutor){
+		if(steps.isEmpty()){
+			throw new IllegalStateException("DAG " + name + " has no steps");
+		}
+
+		DagStep step = new DagStep(taskExecutor);
+		step.setName(name);
+		step.setJobRepository(jobRepository);
+
+		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: DAG " + name + " dependencies: " + dependencies);
+
+		return step;
+	}
+
+	/**
+	 * Critical path of an execution: the chain of steps which set the wall-clock time of the job, so the one to optimize.
+	 *
+	 * It starts from the step which finished last and goes back, each time, to the dependency which finished last
+	 * (the one the step was waiting for). Steps without a StepExecution (for example, steps already COMPLETED in a
+	 * previous execution of a restarted job) end the chain
+	 */
+	public List<String> criticalPath(Collection<StepExecution> stepExecutions){
+		Map<String, StepExecution> executions = executions(stepExecutions);
+		List<String> path = new ArrayList<String>();
+
+		String stepName = lastFinished(executions.keySet(), executions);
+		while(stepName != null){
+			path.add(stepName);
+			stepName = lastFinished(dependencies.get(stepName), executions);
+		}
+		Collections.reverse(path);
+
+		return path;
+	}
+
+	/**
+	 * Critical path as text, e.g: step1 (120 ms) -> step4 (30 ms, queued 5 ms) = 155 ms
+	 *
+	 * "queued" is the time a step waited for a free thread of the TaskExecutor after its dependency finished.
+	 * The total goes from the start of the first step of the path to the end of the last one, so it includes it
+	 */
+	public String describeCriticalPath(Collection<StepExecution> stepExecutions){
+		Map<String, StepExecution> executions = executions(stepExecutions);
+		StringBuilder description = new StringBuilder();
+		StepExecution first = null;
+		StepExecution previous = null;
+
+		for(String stepName : criticalPath(stepExecutions)){
+			StepExecution execution = executions.get(stepName);
+
+			if(previous != null){
+				description.append(" -> ");
+			}
+			description.append(stepName).append(" (").append(duration(execution)).append(" ms");
+			if(previous != null && execution.getStartTime().after(previous.getEndTime())){
+				description.append(", queued ").append(execution.getStartTime().getTime() - previous.getEndTime().getTime()).append(" ms");
+			}
+			description.append(")");
+
+			if(first == null){
+				first = execution;
+			}
+			previous = execution;
+		}
+
+		long total = first == null ? 0 : previous.getEndTime().getTime() - first.getStartTime().getTime();
+
+		return description.append(" = ").append(total).append(" ms").toString();
+	}
+
+	// Finished executions of the steps of this DAG
+	private Map<String, StepExecution> executions(Collection<StepExecution> stepExecutions){
+		Map<String, StepExecution> executions = new HashMap<String, StepExecution>();
+
+		for(StepExecution stepExecution : stepExecutions){
+			if(steps.containsKey(stepExecution.getStepName()) && stepExecution.getStartTime() != null && stepExecution.getEndTime() != null){
+				executions.put(stepExecution.getStepName(), stepExecution);
+			}
+		}
+
+		return executions;
+	}
+
+	private String lastFinished(Collection<String> stepNames, Map<String, StepExecution> executions){
+		String last = null;
+
+		for(String stepName : stepNames){
+			if(executions.containsKey(stepName)
+					&& (last == null || executions.get(stepName).getEndTime().after(executions.get(last).getEndTime()))){
+				last = stepName;
+			}
+		}
+
+		return last;
+	}
+
+	private long duration(StepExecution stepExecution){
+		return stepExecution.getEndTime().getTime() - stepExecution.getStartTime().getTime();
+	}
+
+	/**
+	 * The step which runs the DAG. Each step of the DAG is executed with a SimpleStepHandler (like the steps of a flow),
+	 * which creates its StepExecution in the job execution and skips it if it's already COMPLETED in a restart
+	 */
+	private class DagStep extends AbstractStep {
+
+		private final TaskExecutor taskExecutor;
+
+		DagStep(TaskExecutor taskExecutor){
+			this.taskExecutor = taskExecutor;
+		}
+
+		@Override
+		protected void doExecute(StepExecution stepExecution) throws Exception {
+			final JobExecution jobExecution = stepExecution.getJobExecution();
+			final StepHandler stepHandler = new SimpleStepHandler(getJobRepository());
+
+			// Steps put themselves here when they finish, so this thread knows which steps it can start next.
+			// After a failure no more steps are started, but the running ones are waited for
+			final BlockingQueue<FutureTask<StepExecution>> finished = new LinkedBlockingQueue<FutureTask<StepExecution>>();
+
+			Set<String> started = new LinkedHashSet<String>();
+			Set<String> completed = new LinkedHashSet<String>();
+			int running = 0;
+			String failure = null;
+			Throwable cause = null;
+			boolean interrupted = false;
+			boolean threadInterrupted = false;
+
+			while(true){
+				if(failure == null){
+					for(final String stepName : steps.keySet()){
+						if(!started.contains(stepName) && completed.containsAll(dependencies.get(stepName))){
+							FutureTask<StepExecution> task = new FutureTask<StepExecution>(new Callable<StepExecution>() {
+								public StepExecution call() throws Exception {
+									return stepHandler.handleStep(steps.get(stepName), jobExecution);
+								}
+							}){
+								@Override
+								protected void done() {
+									finished.add(this);
+								}
+							};
+
+							started.add(stepName);
+							try {
+								taskExecutor.execute(task);
+								running++;
+							} catch (TaskRejectedException e) {
+								failure = "Step " + stepName + " of DAG " + name + " couldn't be started: " + e;
+								cause = e;
+								break;
+							}
+						}
+					}
+				}
+
+				if(running == 0){
+					break;
+				}
+
+				FutureTask<StepExecution> task;
+				try {
+					task = finished.take();
+				} catch (InterruptedException e) {
+					// The job thread was interrupted: stop starting steps, but keep waiting for the running ones
+					interrupted = true;
+					threadInterrupted = true;
+					if(failure == null){
+						failure = "DAG " + name + " interrupted";
+						cause = e;
+					}
+					continue;
+				}
+				running--;
+
+				try {
+					StepExecution childExecution = task.get();
+					if(childExecution.getStatus() == BatchStatus.COMPLETED){
+						completed.add(childExecution.getStepName());
+					}
+					else if(failure == null){
+						failure = "Step " + childExecution.getStepName() + " of DAG " + name + " ended with status " + childExecution.getStatus();
+						cause = childExecution.getFailureExceptions().isEmpty() ? null : childExecution.getFailureExceptions().get(0);
+					}
+				} catch (ExecutionException e) {
+					interrupted = interrupted || e.getCause() instanceof JobInterruptedException;
+					if(failure == null){
+						failure = "Step of DAG " + name + " failed: " + e.getCause();
+						cause = e.getCause();
+					}
+				}
+			}
+
+			if(threadInterrupted){
+				Thread.currentThread().interrupt();
+			}
+
+			if(failure != null){
+				if(interrupted || jobExecution.isStopping()){
+					JobInterruptedException exception = new JobInterruptedException(failure);
+					exception.initCause(cause);
+					throw exception;
+				}
+				throw new UnexpectedJobExecutionException(failure, cause);
+			}
+		}
+	}
+}
@@ -0,0 +1,122 @@
+package com.jorge.batch;
+
+import java.util.Collections;
+
+import javax.sql.DataSource;
+
+import org.springframework.batch.item.database.BeanPropertyItemSqlParameterSourceProvider;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.database.JdbcCursorItemReader;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.LineMapper;
+import org.springframework.batch.item.file.mapping.BeanWrapperFieldSetMapper;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.batch.item.xml.StaxEventItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.oxm.xstream.XStreamMarshaller;
+
+import com.jorge.model.User;
+
+/**
+ * Readers and writers of users used by job2 (see the reader and writer methods of BatchConfig)
+ *
+ * The same configuration is used by the BatchConfig beans and by the throughput harness (Job2ThroughputTest),
+ * so they always measure the readers and writers that job2 runs
+ *
+ */
+public class UserItems {
+
+	private UserItems(){
+	}
+
+	// Reads a CSV file with a header line: firstName,age
+	public static FlatFileItemReader<User> csvReader(Resource resource) {
+		FlatFileItemReader<User> reader = new FlatFileItemReader<User>();
+
+		reader.setLineMapper(lineMapper());
+		reader.setResource(resource);
+		reader.setLinesToSkip(1);
+		reader.setEncoding("utf-8");
+
+		return reader;
+	}
+
+	// This method generates an User object from a line in the CSV file
+	private static LineMapper<User> lineMapper() {
+		DefaultLineMapper<User> lineMapper = new DefaultLineMapper<User>();
+		DelimitedLineTokenizer lineTokenizer = new DelimitedLineTokenizer();
+
+		lineTokenizer.setNames(new String[]{"firstName","age"});
+		lineTokenizer.setIncludedFields(new int[]{0,1});
+		lineMapper.setLineTokenizer(lineTokenizer);
+
+		BeanWrapperFieldSetMapper<User> fieldSetMapper = new BeanWrapperFieldSetMapper<User>();
+
+		fieldSetMapper.setTargetType(User.class);
+		lineMapper.setFieldSetMapper(fieldSetMapper);
+
+		return lineMapper;
+	}
+
+	// Reads an XML file of <person> records. XStreamMarshaller generates a User for each of them
+	public static StaxEventItemReader<User> xmlReader(Resource resource) {
+		StaxEventItemReader<User> reader = new StaxEventItemReader<User>();
+
+		XStreamMarshaller marshaller = new XStreamMarshaller();
+		marshaller.setAliases(Collections.singletonMap("person", User.class));
+		marshaller.afterPropertiesSet();
+		marshaller.getXStream().allowTypes(new Class[]{User.class}); // Only User objects can be unmarshalled from the file
+
+		reader.setResource(resource);
+		reader.setFragmentRootElementName("person");
+		reader.setUnmarshaller(marshaller);
+
+		return reader;
+	}
+
+	// Reads the users of a table (first_name and age columns)
+	public static JdbcCursorItemReader<User> dbReader(DataSource dataSource, String table) {
+		JdbcCursorItemReader<User> reader = new JdbcCursorItemReader<User>();
+
+		reader.setDataSource(dataSource);
+		reader.setSql("SELECT first_name, age FROM " + table);
+		reader.setRowMapper(new BeanPropertyRowMapper<User>(User.class));
+
+		return reader;
+	}
+
+	// Writes a "firstName,age" line per user
+	public static FlatFileItemWriter<User> csvWriter(Resource resource) {
+		BeanWrapperFieldExtractor<User> fieldExtractor = new BeanWrapperFieldExtractor<User>();
+
+		fieldExtractor.setNames(new String[]{"firstName","age"});
+
+		DelimitedLineAggregator<User> lineAggregator = new DelimitedLineAggregator<User>();
+
+		lineAggregator.setDelimiter(",");
+		lineAggregator.setFieldExtractor(fieldExtractor);
+
+		FlatFileItemWriter<User> writer = new FlatFileItemWriter<User>();
+
+		writer.setLineAggregator(lineAggregator);
+		writer.setResource(resource);
+
+		return writer;
+	}
+
+	// Inserts the users in a table (first_name and age columns)
+	public static JdbcBatchItemWriter<User> dbWriter(DataSource dataSource, String table) {
+		JdbcBatchItemWriter<User> writer = new JdbcBatchItemWriter<User>();
+
+		writer.setDataSource(dataSource);
+		writer.setSql("INSERT INTO " + table + " (first_name, age) " + "VALUES ( :firstName, :age)");
+		writer.setItemSqlParameterSourceProvider(new BeanPropertyItemSqlParameterSourceProvider<User>());
+
+		return writer;
+	}
+}
@@ -0,0 +1,310 @@
+package com.jorge.batch;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.support.SimpleJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.repository.support.MapJobRepositoryFactoryBean;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.core.step.tasklet.TaskletStep;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+
+import junit.framework.Assert;
+
+/**
+ * Testing StepDag: the critical path of an execution, and DAG jobs launched with an in-memory job repository
+ * (scheduling of independent steps, join points, failures, restarts and the critical path in the exit description)
+ *
+ */
+public class StepDagTest {
+
+	private JobRepository jobRepository;
+	private SimpleJobLauncher jobLauncher;
+	private StepBuilderFactory steps;
+
+	@Before
+	public void setUp() throws Exception {
+		MapJobRepositoryFactoryBean jobRepositoryFactory = new MapJobRepositoryFactoryBean();
+		jobRepositoryFactory.afterPropertiesSet();
+		jobRepository = jobRepositoryFactory.getObject();
+
+		jobLauncher = new SimpleJobLauncher();
+		jobLauncher.setJobRepository(jobRepository);
+		jobLauncher.afterPropertiesSet();
+
+		steps = new StepBuilderFactory(jobRepository, new ResourcelessTransactionManager());
+	}
+
+	// stepA and stepB are independent, stepC needs stepA, stepD needs stepB and stepC
+	@Test
+	public void testCriticalPath() throws Exception {
+		StepDag dag = new StepDag("test")
+		.step(new TaskletStep("stepA"))
+		.step(new TaskletStep("stepB"))
+		.step(new TaskletStep("stepC"), new TaskletStep("stepA"))
+		.step(new TaskletStep("stepD"), new TaskletStep("stepB"), new TaskletStep("stepC"));
+
+		JobExecution jobExecution = new JobExecution(1L);
+		stepExecution(jobExecution, "stepA", 0, 100);
+		stepExecution(jobExecution, "stepB", 0, 250);
+		stepExecution(jobExecution, "stepC", 100, 200);
+		stepExecution(jobExecution, "stepD", 250, 260);
+
+		Assert.assertEquals(Arrays.asList("stepB", "stepD"), dag.criticalPath(jobExecution.getStepExecutions()));
+		Assert.assertEquals("stepB (250 ms) -> stepD (10 ms) = 260 ms", dag.describeCriticalPath(jobExecution.getStepExecutions()));
+	}
+
+	// stepB waits 40 ms for a free thread after stepA: it's shown as queued time and counted in the total
+	@Test
+	public void testCriticalPathQueuedTime() throws Exception {
+		StepDag dag = new StepDag("test")
+		.step(new TaskletStep("stepA"))
+		.step(new TaskletStep("stepB"), new TaskletStep("stepA"));
+
+		JobExecution jobExecution = new JobExecution(1L);
+		stepExecution(jobExecution, "stepA", 0, 100);
+		stepExecution(jobExecution, "stepB", 140, 200);
+
+		Assert.assertEquals("stepA (100 ms) -> stepB (60 ms, queued 40 ms) = 200 ms", dag.describeCriticalPath(jobExecution.getStepExecutions()));
+	}
+
+	// stepA and stepB overlap, and stepC (which only needs stepA) doesn't wait for stepB
+	@Test
+	public void testIndependentStepsRunAtTheSameTime() throws Exception {
+		RecordingTasklet a = new RecordingTasklet(200, 0);
+		RecordingTasklet b = new RecordingTasklet(600, 0);
+		RecordingTasklet c = new RecordingTasklet(50, 0);
+		RecordingTasklet d = new RecordingTasklet(0, 0);
+
+		Step stepA = step("stepA", a);
+		Step stepB = step("stepB", b);
+		Step stepC = step("stepC", c);
+		StepDag dag = new StepDag("dag")
+		.step(stepA)
+		.step(stepB)
+		.step(stepC, stepA)
+		.step(step("stepD", d), stepB, stepC);
+
+		JobExecution jobExecution = jobLauncher.run(job(dag), new JobParameters());
+
+		Assert.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+		Assert.assertTrue("stepA and stepB overlap", a.start < b.end && b.start < a.end);
+		Assert.assertFalse("stepA and stepB run on different threads", a.thread.equals(b.thread));
+		Assert.assertTrue("stepC starts after stepA", c.start >= a.end);
+		Assert.assertTrue("stepC doesn't wait for stepB", c.start < b.end);
+		Assert.assertTrue("stepD waits for stepB and stepC", d.start >= b.end && d.start >= c.end);
+	}
+
+	// stepA fails: stepB (which needs it) is never started and the job ends as FAILED
+	@Test
+	public void testFailureStopsDependentSteps() throws Exception {
+		RecordingTasklet a = new RecordingTasklet(0, 1);
+		RecordingTasklet b = new RecordingTasklet(0, 0);
+		RecordingTasklet c = new RecordingTasklet(100, 0);
+
+		Step stepA = step("stepA", a);
+		StepDag dag = new StepDag("dag")
+		.step(stepA)
+		.step(step("stepC", c))
+		.step(step("stepB", b), stepA);
+
+		JobExecution jobExecution = jobLauncher.run(job(dag), new JobParameters());
+
+		Assert.assertEquals(BatchStatus.FAILED, jobExecution.getStatus());
+		Assert.assertEquals(0, b.executions.get());
+		Assert.assertEquals("running steps are waited for", 1, c.executions.get());
+
+		// The exception of stepA is the cause of the DAG step failure
+		Throwable dagFailure = stepExecution(jobExecution, "dag").getFailureExceptions().get(0);
+		Assert.assertEquals("Failing on purpose", dagFailure.getCause().getMessage());
+	}
+
+	// The TaskExecutor rejects stepB: the job fails, but only after the running stepA has finished
+	@Test
+	public void testRejectedStepWaitsForRunningSteps() throws Exception {
+		final SimpleAsyncTaskExecutor asyncTaskExecutor = new SimpleAsyncTaskExecutor();
+		final AtomicInteger accepted = new AtomicInteger();
+		TaskExecutor taskExecutor = new TaskExecutor() {
+			public void execute(Runnable task) {
+				if(accepted.incrementAndGet() > 1){
+					throw new TaskRejectedException("Rejecting on purpose");
+				}
+				asyncTaskExecutor.execute(task);
+			}
+		};
+
+		RecordingTasklet a = new RecordingTasklet(200, 0);
+		RecordingTasklet b = new RecordingTasklet(0, 0);
+		StepDag dag = new StepDag("dag")
+		.step(step("stepA", a))
+		.step(step("stepB", b));
+
+		JobExecution jobExecution = jobLauncher.run(job(dag, taskExecutor), new JobParameters());
+
+		Assert.assertEquals(BatchStatus.FAILED, jobExecution.getStatus());
+		Assert.assertEquals(0, b.executions.get());
+		Assert.assertEquals(BatchStatus.COMPLETED, stepExecution(jobExecution, "stepA").getStatus());
+		Assert.assertTrue(stepExecution(jobExecution, "dag").getFailureExceptions().get(0).getCause() instanceof TaskRejectedException);
+	}
+
+	// The job thread is interrupted while stepA runs: stepB (which needs it) isn't started, but stepA is waited for
+	@Test
+	public void testInterruptedJobWaitsForRunningSteps() throws Exception {
+		final Thread[] jobThread = new Thread[1];
+		jobLauncher.setTaskExecutor(new TaskExecutor() {
+			public void execute(Runnable task) {
+				jobThread[0] = new Thread(task);
+				jobThread[0].start();
+			}
+		});
+
+		RecordingTasklet a = new RecordingTasklet(400, 0);
+		RecordingTasklet b = new RecordingTasklet(0, 0);
+		Step stepA = step("stepA", a);
+		StepDag dag = new StepDag("dag")
+		.step(stepA)
+		.step(step("stepB", b), stepA);
+
+		JobExecution jobExecution = jobLauncher.run(job(dag), new JobParameters());
+		Thread.sleep(100);
+		jobThread[0].interrupt();
+		jobThread[0].join(5000);
+
+		Assert.assertFalse(jobExecution.isRunning());
+		Assert.assertEquals(BatchStatus.STOPPED, jobExecution.getStatus());
+		Assert.assertEquals(BatchStatus.COMPLETED, stepExecution(jobExecution, "stepA").getStatus());
+		Assert.assertEquals(0, b.executions.get());
+	}
+
+	// stepB fails in the first execution; the restart runs stepB and stepC again, but not the COMPLETED stepA
+	@Test
+	public void testRestartOnlyRunsNotCompletedSteps() throws Exception {
+		RecordingTasklet a = new RecordingTasklet(0, 0);
+		RecordingTasklet b = new RecordingTasklet(0, 1);
+		RecordingTasklet c = new RecordingTasklet(0, 0);
+
+		Step stepA = step("stepA", a);
+		Step stepB = step("stepB", b);
+		StepDag dag = new StepDag("dag")
+		.step(stepA)
+		.step(stepB, stepA)
+		.step(step("stepC", c), stepB);
+		Job job = job(dag);
+		JobParameters jobParameters = new JobParametersBuilder().addLong("run", 1L).toJobParameters();
+
+		Assert.assertEquals(BatchStatus.FAILED, jobLauncher.run(job, jobParameters).getStatus());
+		Assert.assertEquals(BatchStatus.COMPLETED, jobLauncher.run(job, jobParameters).getStatus());
+
+		Assert.assertEquals(1, a.executions.get());
+		Assert.assertEquals(2, b.executions.get());
+		Assert.assertEquals(1, c.executions.get());
+	}
+
+	@Test
+	public void testCriticalPathInExitDescription() throws Exception {
+		Step stepA = step("stepA", new RecordingTasklet(50, 0));
+		StepDag dag = new StepDag("dag")
+		.step(stepA)
+		.step(step("stepB", new RecordingTasklet(0, 0)))
+		.step(step("stepC", new RecordingTasklet(0, 0)), stepA);
+
+		JobExecution jobExecution = jobLauncher.run(job(dag), new JobParameters());
+
+		Assert.assertEquals(BatchStatus.COMPLETED, jobExecution.getStatus());
+		Assert.assertTrue(jobExecution.getExitStatus().getExitDescription(),
+				jobExecution.getExitStatus().getExitDescription().startsWith("critical path: stepA ("));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownDependency() throws Exception {
+		new StepDag("test").step(new TaskletStep("stepC"), new TaskletStep("stepA"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDuplicateStep() throws Exception {
+		new StepDag("test").step(new TaskletStep("stepA")).step(new TaskletStep("stepA"));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testEmptyDag() throws Exception {
+		new StepDag("test").toStep(jobRepository, new SimpleAsyncTaskExecutor());
+	}
+
+	private Job job(StepDag dag){
+		return job(dag, new SimpleAsyncTaskExecutor());
+	}
+
+	private Job job(StepDag dag, TaskExecutor taskExecutor){
+		return new JobBuilderFactory(jobRepository).get("job")
+		.start(dag.toStep(jobRepository, taskExecutor))
+		.listener(new CriticalPathListener(dag))
+		.build();
+	}
+
+	private Step step(String name, Tasklet tasklet){
+		return steps.get(name).tasklet(tasklet).build();
+	}
+
+	private StepExecution stepExecution(JobExecution jobExecution, String stepName){
+		for(StepExecution stepExecution : jobExecution.getStepExecutions()){
+			if(stepExecution.getStepName().equals(stepName)){
+				return stepExecution;
+			}
+		}
+		throw new IllegalArgumentException("No execution of " + stepName);
+	}
+
+	private void stepExecution(JobExecution jobExecution, String stepName, long start, long end){
+		StepExecution stepExecution = jobExecution.createStepExecution(stepName);
+		stepExecution.setStartTime(new Date(start));
+		stepExecution.setEndTime(new Date(end));
+	}
+
+	// Tasklet that sleeps, records when and where it ran, and fails the first "failures" times
+	private static class RecordingTasklet implements Tasklet {
+
+		private final long sleepMillis;
+		private final AtomicInteger failures;
+		private final AtomicInteger executions = new AtomicInteger();
+		private volatile long start;
+		private volatile long end;
+		private volatile String thread;
+
+		RecordingTasklet(long sleepMillis, int failures){
+			this.sleepMillis = sleepMillis;
+			this.failures = new AtomicInteger(failures);
+		}
+
+		public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+			executions.incrementAndGet();
+			thread = Thread.currentThread().getName();
+			start = System.nanoTime();
+			Thread.sleep(sleepMillis);
+			end = System.nanoTime();
+
+			if(failures.getAndDecrement() > 0){
+				throw new IllegalStateException("Failing on purpose");
+			}
+			return RepeatStatus.FINISHED;
+		}
+	}
+}
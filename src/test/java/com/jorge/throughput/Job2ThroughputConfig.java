@@ -0,0 +1,74 @@
+package com.jorge.throughput;
+
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.batch.core.configuration.annotation.EnableBatchProcessing;
+import org.springframework.batch.core.step.tasklet.SystemCommandTasklet;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+import com.jorge.batch.BatchConfig;
+
+/**
+ * BatchConfig with the synthetic H2 database of a UserDataGenerator instead of the MySQL database
+ *
+ * Every bean of BatchConfig (job2, its reader, processor and writer, the job repository and job launcher of
+ * @EnableBatchProcessing...) is the real one, only dataSource() is replaced. The generator is registered in the
+ * context by Job2ThroughputTest before it's refreshed. job1 is not launched every 10 seconds, so it doesn't run
+ * during the measurements (its system command only gets a working directory that exists here, since
+ * SystemCommandTasklet checks it on creation)
+ *
+ */
+@Configuration
+@EnableBatchProcessing
+public class Job2ThroughputConfig extends BatchConfig {
+
+	private final UserDataGenerator generator;
+
+	// Constructor injection: the autowired fields of BatchConfig already need dataSource()
+	@Autowired
+	public Job2ThroughputConfig(UserDataGenerator generator){
+		this.generator = generator;
+	}
+
+	// Dataset database, with the Spring Batch schema for the JDBC job repository (like batch_jobs_db in MySQL)
+	@Bean
+	@Override
+	public DataSource dataSource() {
+		try {
+			DataSource dataSource = generator.database();
+
+			JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+			if(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'BATCH_JOB_INSTANCE'", Integer.class) == 0){
+				DatabasePopulatorUtils.execute(new ResourceDatabasePopulator(new ClassPathResource("org/springframework/batch/core/schema-h2.sql")), dataSource);
+			}
+
+			return dataSource;
+		} catch (SQLException e) {
+			throw new IllegalStateException("Can't create the users database", e);
+		}
+	}
+
+	// Not @Scheduled
+	@Override
+	public void runJob1() {
+	}
+
+	@Override
+	public SystemCommandTasklet task1() {
+		SystemCommandTasklet tasklet = new SystemCommandTasklet();
+
+		tasklet.setCommand("touch test.txt");
+		tasklet.setWorkingDirectory(System.getProperty("java.io.tmpdir"));
+		tasklet.setTimeout(5000);
+
+		return tasklet;
+	}
+}
@@ -0,0 +1,452 @@
+package com.jorge.throughput;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ExitStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParametersBuilder;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.configuration.annotation.JobBuilderFactory;
+import org.springframework.batch.core.configuration.annotation.StepBuilderFactory;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.TaskletStep;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.database.JdbcBatchItemWriter;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.jorge.batch.BatchConfig;
+import com.jorge.batch.UserItems;
+import com.jorge.model.User;
+
+import junit.framework.Assert;
+
+/**
+ * End-to-end throughput regression harness for job2
+ *
+ * job2 (read users, increment their age with UserProcessorIncrementAge, write them) is run on synthetic datasets
+ * (see UserDataGenerator) with every reader/writer combination of BatchConfig:
+ * 		- readers: csv (FlatFileItemReader), xml (StaxEventItemReader), db (JdbcCursorItemReader)
+ * 		- writers: csv (FlatFileItemWriter), db (JdbcBatchItemWriter)
+ * The database is an embedded H2 database in MySQL mode instead of MySQL (see Job2ThroughputConfig).
+ *
+ * db-csv is the combination BatchConfig wires, so it launches the real job2 bean of BatchConfig (with the output
+ * file as fileOut job parameter). The other combinations are a job2 built here with the same step2 settings, the
+ * processor bean, and the readers and writers of UserItems (the ones BatchConfig uses). The db writer inserts in
+ * user_out instead of user, so the db reader never reads the users written by the same run. Every run uses the
+ * JDBC job repository of @EnableBatchProcessing, so the repository writes of every chunk commit are measured too
+ *
+ * Before measuring, each combination is run (and discarded) on a small dataset of throughput.warmupRows users until
+ * it's warm (JIT, class loading, H2 and file caches): until two consecutive runs differ less than
+ * throughput.warmupTolerance in items/sec, at most throughput.maxWarmups times (a warning is logged if it doesn't
+ * settle). So big datasets are only run throughput.repetitions times, and the median of every metric is reported:
+ * the result doesn't depend on the order of the combinations or on running only some of them
+ *
+ * Peak heap is the sum of the peak usage of every heap memory pool during the run (the peaks are reset before it).
+ * The pools don't peak at the same time, so it's an upper bound, but it sees the allocations inside a chunk.
+ * GC time is only reported: it's too small and noisy at small sizes to be compared
+ *
+ * It's skipped unless the dataset sizes are given, so it doesn't slow down the normal build. Run it with the throughput profile:
+ * 		mvn test -Pthroughput
+ * 		mvn test -Pthroughput -Dthroughput.rows=1000000,10000000,100000000
+ *
+ * System properties (defaults in the throughput profile of pom.xml):
+ * 		throughput.rows				comma-separated dataset sizes
+ * 		throughput.seed				seed of the synthetic data (same seed = same rows)
+ * 		throughput.warmupRows		size of the dataset every combination is warmed up with
+ * 		throughput.maxWarmups		maximum discarded runs of every combination before measuring
+ * 		throughput.warmupTolerance	items/sec difference between two warmup runs to consider it warm (0.05 = 5%)
+ * 		throughput.repetitions		measured runs of every combination and size (the median is reported)
+ * 		throughput.combinations		comma-separated reader-writer combinations to run (default: all of them)
+ * 		throughput.dir				where datasets and output files are stored (reused by the next runs)
+ * 		throughput.baseline			properties file with the reference results
+ * 		throughput.maxRegression	allowed regression against the baseline (0.2 = 20%)
+ * 		throughput.writeBaseline	true to save the results of this run as the new baseline
+ *
+ * The build fails if any run has lower items/sec, or higher peak heap or time per chunk, than its baseline
+ * by more than throughput.maxRegression. Runs without baseline are only reported
+ *
+ */
+public class Job2ThroughputTest {
+
+	private static final String[] READERS = {"csv", "xml", "db"};
+	private static final String[] WRITERS = {"csv", "db"};
+
+	// The reader/writer combination of job2 in BatchConfig
+	private static final String JOB2 = "db-csv";
+
+	private final ChunkTimer chunkTimer = new ChunkTimer();
+
+	private long launches = 0;
+
+	@Test
+	public void testThroughput() throws Exception {
+		String rowsProperty = System.getProperty("throughput.rows", "");
+		if(rowsProperty.trim().isEmpty()){
+			System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: throughput.rows not set, skipping the throughput harness (mvn test -Pthroughput)");
+		}
+		Assume.assumeTrue(!rowsProperty.trim().isEmpty());
+
+		long seed = Long.parseLong(System.getProperty("throughput.seed", "42"));
+		long warmupRows = Long.parseLong(System.getProperty("throughput.warmupRows", "50000"));
+		int maxWarmups = Integer.parseInt(System.getProperty("throughput.maxWarmups", "10"));
+		double warmupTolerance = Double.parseDouble(System.getProperty("throughput.warmupTolerance", "0.05"));
+		int repetitions = Integer.parseInt(System.getProperty("throughput.repetitions", "3"));
+		List<String> combinations = combinations(list(System.getProperty("throughput.combinations", "")));
+		File directory = new File(System.getProperty("throughput.dir", "target/throughput"));
+		File baselineFile = new File(System.getProperty("throughput.baseline", "throughput/baseline.properties"));
+		double maxRegression = Double.parseDouble(System.getProperty("throughput.maxRegression", "0.2"));
+		boolean writeBaseline = Boolean.parseBoolean(System.getProperty("throughput.writeBaseline", "false"));
+
+		List<ThroughputResult> results = new ArrayList<ThroughputResult>();
+		List<String> failures = new ArrayList<String>();
+
+		UserDataGenerator warmupGenerator = new UserDataGenerator(directory, warmupRows, seed);
+		AnnotationConfigApplicationContext context = context(warmupGenerator);
+		try {
+			for(String combination : combinations){
+				warmUp(context, combination, warmupGenerator, directory, maxWarmups, warmupTolerance);
+			}
+		} finally {
+			context.close();
+		}
+
+		for(String rowsValue : list(rowsProperty)){
+			long rows = Long.parseLong(rowsValue);
+			UserDataGenerator generator = new UserDataGenerator(directory, rows, seed);
+
+			context = context(generator);
+			try {
+				for(String combination : combinations){
+					List<ThroughputResult> repetitionResults = new ArrayList<ThroughputResult>();
+					for(int i = 0; i < repetitions; i++){
+						ThroughputResult result = run(context, combination, generator, directory);
+						repetitionResults.add(result);
+						System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": RESULT: " + result);
+
+						if(result.getItems() != rows){
+							failures.add(result.key() + ": wrote " + result.getItems() + " users instead of " + rows);
+						}
+					}
+					results.add(ThroughputResult.median(repetitionResults));
+				}
+			} finally {
+				context.close();
+			}
+		}
+
+		System.out.println(report(results));
+
+		Properties baseline = load(baselineFile);
+		for(ThroughputResult result : results){
+			failures.addAll(compare(result, baseline, maxRegression));
+		}
+
+		if(writeBaseline){
+			save(baselineFile, baseline, results);
+		}
+
+		Assert.assertTrue("Throughput regressions (max " + (maxRegression * 100) + "%):\n" + join(failures), failures.isEmpty());
+	}
+
+	// BatchConfig on the database of generator (see Job2ThroughputConfig). chunkTimer times every chunk of the real step2
+	private AnnotationConfigApplicationContext context(UserDataGenerator generator){
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.getBeanFactory().registerSingleton("userDataGenerator", generator);
+		context.register(Job2ThroughputConfig.class);
+		context.refresh();
+
+		context.getBean("step2", TaskletStep.class).registerChunkListener(chunkTimer);
+
+		return context;
+	}
+
+	// Run a combination on the warmup dataset until two consecutive runs have about the same items/sec
+	private void warmUp(AnnotationConfigApplicationContext context, String combination, UserDataGenerator generator, File directory,
+			int maxWarmups, double warmupTolerance) throws Exception {
+		ThroughputResult previous = null;
+
+		for(int i = 0; i < maxWarmups; i++){
+			ThroughputResult warmup = run(context, combination, generator, directory);
+			System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": WARMUP: " + warmup);
+
+			if(previous != null && Math.abs(warmup.itemsPerSecond() - previous.itemsPerSecond()) <= warmupTolerance * previous.itemsPerSecond()){
+				return;
+			}
+			previous = warmup;
+		}
+
+		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": WARNING: " + combination
+				+ " didn't settle within " + (warmupTolerance * 100) + "% after " + maxWarmups + " warmup runs, its results may be too low (raise throughput.warmupRows or throughput.maxWarmups)");
+	}
+
+	// Run job2 once with a combination and measure it
+	private ThroughputResult run(AnnotationConfigApplicationContext context, String combination, UserDataGenerator generator, File directory) throws Exception {
+		File csvFile = new File(directory, "out-" + generator.getRows() + "-" + combination + ".csv");
+
+		JobParametersBuilder jobParametersBuilder = new JobParametersBuilder();
+		jobParametersBuilder.addDate("d", new Date());
+		jobParametersBuilder.addLong("run", ++launches);
+
+		Job job2;
+		if(JOB2.equals(combination)){
+			job2 = context.getBean("job2", Job.class);
+			jobParametersBuilder.addString("fileOut", csvFile.getPath());
+		}
+		else {
+			job2 = job2(context, combination, generator, csvFile);
+		}
+
+		chunkTimer.reset();
+		System.gc();
+		long gcMillis = gcMillis();
+		resetPeakHeap();
+		long start = System.currentTimeMillis();
+
+		JobExecution jobExecution = context.getBean(JobLauncher.class).run(job2, jobParametersBuilder.toJobParameters());
+
+		long elapsedMillis = System.currentTimeMillis() - start;
+		long peakHeapBytes = peakHeapBytes();
+		gcMillis = gcMillis() - gcMillis;
+
+		Assert.assertEquals(combination + ": " + jobExecution.getAllFailureExceptions(), ExitStatus.COMPLETED, jobExecution.getExitStatus());
+
+		long items = 0;
+		for(StepExecution stepExecution : jobExecution.getStepExecutions()){
+			items += stepExecution.getWriteCount();
+		}
+
+		return new ThroughputResult(combination, generator.getRows(), items, elapsedMillis, peakHeapBytes, gcMillis,
+				chunkTimer.chunks, chunkTimer.meanMillis(), chunkTimer.maxNanos / 1000000.0);
+	}
+
+	// job2 with another reader/writer combination: same step2 as BatchConfig.step2(), with the readers and writers of UserItems
+	@SuppressWarnings("unchecked")
+	private Job job2(AnnotationConfigApplicationContext context, String combination, UserDataGenerator generator, File csvFile) throws Exception {
+		String[] readerWriter = combination.split("-");
+		DataSource dataSource = context.getBean(DataSource.class);
+
+		return context.getBean(JobBuilderFactory.class).get("job2")
+		.start(context.getBean(StepBuilderFactory.class).get("step2")
+			.<User,User>chunk(BatchConfig.STEP2_CHUNK_SIZE)
+			.reader(reader(readerWriter[0], generator, dataSource))
+			.processor(context.getBean("processor", ItemProcessor.class))
+			.writer(writer(readerWriter[1], dataSource, csvFile))
+			.listener(chunkTimer)
+			.build())
+		.build();
+	}
+
+	private ItemStreamReader<User> reader(String type, UserDataGenerator generator, DataSource dataSource) throws Exception {
+		if("csv".equals(type)){
+			return UserItems.csvReader(new FileSystemResource(generator.csv()));
+		}
+		if("xml".equals(type)){
+			return UserItems.xmlReader(new FileSystemResource(generator.xml()));
+		}
+		if("db".equals(type)){
+			return UserItems.dbReader(dataSource, "user");
+		}
+
+		throw new IllegalArgumentException("Unknown reader: " + type);
+	}
+
+	// The db writer inserts in user_out (emptied before every run)
+	private ItemWriter<User> writer(String type, DataSource dataSource, File csvFile) throws Exception {
+		if("csv".equals(type)){
+			FlatFileItemWriter<User> writer = UserItems.csvWriter(new FileSystemResource(csvFile));
+			writer.afterPropertiesSet();
+			return writer;
+		}
+		if("db".equals(type)){
+			new JdbcTemplate(dataSource).execute("TRUNCATE TABLE user_out");
+
+			JdbcBatchItemWriter<User> writer = UserItems.dbWriter(dataSource, "user_out");
+			writer.afterPropertiesSet();
+			return writer;
+		}
+
+		throw new IllegalArgumentException("Unknown writer: " + type);
+	}
+
+	// Every reader-writer combination, or only the selected ones
+	private List<String> combinations(List<String> selected){
+		List<String> combinations = new ArrayList<String>();
+
+		for(String reader : READERS){
+			for(String writer : WRITERS){
+				String combination = reader + "-" + writer;
+				if(selected.isEmpty() || selected.contains(combination)){
+					combinations.add(combination);
+				}
+			}
+		}
+
+		return combinations;
+	}
+
+	// Regressions of a result against its baseline (none if there is no baseline for it)
+	private List<String> compare(ThroughputResult result, Properties baseline, double maxRegression){
+		List<String> regressions = new ArrayList<String>();
+
+		String itemsPerSecond = baseline.getProperty(result.key() + ".itemsPerSecond");
+		if(itemsPerSecond != null && result.itemsPerSecond() < Double.parseDouble(itemsPerSecond) * (1 - maxRegression)){
+			regressions.add(String.format("%s: %.0f items/sec, baseline %s", result.key(), result.itemsPerSecond(), itemsPerSecond));
+		}
+
+		String peakHeapBytes = baseline.getProperty(result.key() + ".peakHeapBytes");
+		if(peakHeapBytes != null && result.getPeakHeapBytes() > Double.parseDouble(peakHeapBytes) * (1 + maxRegression)){
+			regressions.add(String.format("%s: %d bytes of peak heap, baseline %s", result.key(), result.getPeakHeapBytes(), peakHeapBytes));
+		}
+
+		String meanChunkMillis = baseline.getProperty(result.key() + ".meanChunkMillis");
+		if(meanChunkMillis != null && result.getMeanChunkMillis() > Double.parseDouble(meanChunkMillis) * (1 + maxRegression)){
+			regressions.add(String.format("%s: %.3f ms/chunk, baseline %s", result.key(), result.getMeanChunkMillis(), meanChunkMillis));
+		}
+
+		return regressions;
+	}
+
+	private String report(List<ThroughputResult> results){
+		StringBuilder report = new StringBuilder("\nJob2 throughput\n").append(ThroughputResult.header()).append('\n');
+		for(ThroughputResult result : results){
+			report.append(result).append('\n');
+		}
+		return report.toString();
+	}
+
+	private Properties load(File file) throws Exception {
+		Properties properties = new Properties();
+		if(file.exists()){
+			InputStream in = new FileInputStream(file);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return properties;
+	}
+
+	// Results of this run replace the old values, the baseline of other sizes/combinations is kept
+	private void save(File file, Properties baseline, List<ThroughputResult> results) throws Exception {
+		for(ThroughputResult result : results){
+			baseline.setProperty(result.key() + ".itemsPerSecond", Double.toString(result.itemsPerSecond()));
+			baseline.setProperty(result.key() + ".peakHeapBytes", Long.toString(result.getPeakHeapBytes()));
+			baseline.setProperty(result.key() + ".meanChunkMillis", Double.toString(result.getMeanChunkMillis()));
+		}
+
+		if(file.getAbsoluteFile().getParentFile() != null){
+			file.getAbsoluteFile().getParentFile().mkdirs();
+		}
+		OutputStream out = new FileOutputStream(file);
+		try {
+			baseline.store(out, "job2 throughput baseline (Job2ThroughputTest)");
+		} finally {
+			out.close();
+		}
+
+		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: baseline saved in " + file);
+	}
+
+	private void resetPeakHeap(){
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP){
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	private long peakHeapBytes(){
+		long bytes = 0;
+		for(MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()){
+			if(pool.getType() == MemoryType.HEAP){
+				bytes += pool.getPeakUsage().getUsed();
+			}
+		}
+		return bytes;
+	}
+
+	private long gcMillis(){
+		long millis = 0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+			millis += Math.max(0, gc.getCollectionTime());
+		}
+		return millis;
+	}
+
+	private List<String> list(String value){
+		List<String> values = new ArrayList<String>();
+		for(String item : Arrays.asList(value.split(","))){
+			if(!item.trim().isEmpty()){
+				values.add(item.trim());
+			}
+		}
+		return values;
+	}
+
+	private String join(List<String> lines){
+		StringBuilder joined = new StringBuilder();
+		for(String line : lines){
+			joined.append(line).append('\n');
+		}
+		return joined.toString();
+	}
+
+	// Time of every chunk (read + process + write + commit)
+	private static class ChunkTimer implements ChunkListener {
+
+		private long start;
+		private long chunks;
+		private long totalNanos;
+		private long maxNanos;
+
+		public void beforeChunk(ChunkContext context) {
+			start = System.nanoTime();
+		}
+
+		public void afterChunk(ChunkContext context) {
+			long nanos = System.nanoTime() - start;
+			chunks++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+		public void afterChunkError(ChunkContext context) {
+		}
+
+		private void reset(){
+			chunks = 0;
+			totalNanos = 0;
+			maxNanos = 0;
+		}
+
+		private double meanMillis(){
+			return chunks == 0 ? 0 : totalNanos / 1000000.0 / chunks;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.jorge.throughput;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Measurements of one job2 run (one dataset size and one reader/writer combination)
+ *
+ * peakHeapBytes is the sum of the peak usage of every heap memory pool during the run
+ *
+ */
+public class ThroughputResult {
+
+	private final String combination;
+	private final long rows;
+	private final long items;
+	private final long elapsedMillis;
+	private final long peakHeapBytes;
+	private final long gcMillis;
+	private final long chunks;
+	private final double meanChunkMillis;
+	private final double maxChunkMillis;
+
+	public ThroughputResult(String combination, long rows, long items, long elapsedMillis, long peakHeapBytes, long gcMillis,
+			long chunks, double meanChunkMillis, double maxChunkMillis){
+		this.combination = combination;
+		this.rows = rows;
+		this.items = items;
+		this.elapsedMillis = elapsedMillis;
+		this.peakHeapBytes = peakHeapBytes;
+		this.gcMillis = gcMillis;
+		this.chunks = chunks;
+		this.meanChunkMillis = meanChunkMillis;
+		this.maxChunkMillis = maxChunkMillis;
+	}
+
+	// Median of every metric of several runs of the same combination (each metric is taken separately)
+	public static ThroughputResult median(List<ThroughputResult> results){
+		List<Long> items = new ArrayList<Long>();
+		List<Long> elapsedMillis = new ArrayList<Long>();
+		List<Long> peakHeapBytes = new ArrayList<Long>();
+		List<Long> gcMillis = new ArrayList<Long>();
+		List<Long> chunks = new ArrayList<Long>();
+		List<Double> meanChunkMillis = new ArrayList<Double>();
+		List<Double> maxChunkMillis = new ArrayList<Double>();
+
+		for(ThroughputResult result : results){
+			items.add(result.items);
+			elapsedMillis.add(result.elapsedMillis);
+			peakHeapBytes.add(result.peakHeapBytes);
+			gcMillis.add(result.gcMillis);
+			chunks.add(result.chunks);
+			meanChunkMillis.add(result.meanChunkMillis);
+			maxChunkMillis.add(result.maxChunkMillis);
+		}
+
+		ThroughputResult first = results.get(0);
+		return new ThroughputResult(first.combination, first.rows, middle(items), middle(elapsedMillis), middle(peakHeapBytes), middle(gcMillis),
+				middle(chunks), middle(meanChunkMillis), middle(maxChunkMillis));
+	}
+
+	// Middle value (the lower one for an even number of values)
+	private static <T extends Comparable<T>> T middle(List<T> values){
+		List<T> sorted = new ArrayList<T>(values);
+		Collections.sort(sorted);
+		return sorted.get((sorted.size() - 1) / 2);
+	}
+
+	// Key of this run in the baseline file, e.g: 1000000.csv-db
+	public String key() {
+		return rows + "." + combination;
+	}
+
+	public double itemsPerSecond() {
+		return elapsedMillis == 0 ? items * 1000.0 : items * 1000.0 / elapsedMillis;
+	}
+
+	public String getCombination() {
+		return combination;
+	}
+	public long getRows() {
+		return rows;
+	}
+	public long getItems() {
+		return items;
+	}
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+	public long getPeakHeapBytes() {
+		return peakHeapBytes;
+	}
+	public long getGcMillis() {
+		return gcMillis;
+	}
+	public long getChunks() {
+		return chunks;
+	}
+	public double getMeanChunkMillis() {
+		return meanChunkMillis;
+	}
+	public double getMaxChunkMillis() {
+		return maxChunkMillis;
+	}
+
+	public static String header() {
+		return String.format("%-12s %12s %12s %10s %12s %13s %10s %14s %13s",
+				"combination", "rows", "items", "time ms", "items/sec", "peak heap MB", "gc ms", "ms/chunk mean", "ms/chunk max");
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%-12s %12d %12d %10d %12.0f %13.1f %10d %14.3f %13.3f",
+				combination, rows, items, elapsedMillis, itemsPerSecond(), peakHeapBytes / (1024.0 * 1024.0), gcMillis, meanChunkMillis, maxChunkMillis);
+	}
+}
@@ -0,0 +1,187 @@
+package com.jorge.throughput;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+/**
+ * Generating synthetic User datasets
+ *
+ * The same rows (firstName, age) are generated for a given number of rows and seed, in three formats:
+ * 		- CSV file, like CSV/input_data.txt (first line is a header, skipped by the reader)
+ * 		- XML file, like xml/input_data.xml (<records><person>...</person></records>)
+ * 		- Embedded H2 database in MySQL mode, standing in for the MySQL batch_jobs_db database (user table)
+ *
+ * Generating 100M rows takes a while, so every dataset is generated only once in the working directory and reused
+ * by the next runs. A dataset is written to a temporary file first, so an interrupted generation is never reused.
+ * The H2 database is file based, so big datasets don't live in the heap and don't disturb the heap measurements
+ *
+ */
+public class UserDataGenerator {
+
+	private static final String[] NAMES = {"Merlin", "Arthur", "Lancelot", "Tristan", "Iseult", "Mark", "Shania", "Nelly",
+		"Guinevere", "Gawain", "Percival", "Morgana", "Galahad", "Bedivere", "Elaine", "Kay"};
+
+	private static final int INSERT_BATCH_SIZE = 10000;
+
+	private final File directory;
+	private final long rows;
+	private final long seed;
+
+	public UserDataGenerator(File directory, long rows, long seed){
+		this.directory = directory;
+		this.rows = rows;
+		this.seed = seed;
+		directory.mkdirs();
+	}
+
+	public long getRows() {
+		return rows;
+	}
+
+	// CSV dataset: header line + one "firstName,age" line per user
+	public File csv() throws IOException {
+		File file = new File(directory, "users-" + rows + "-" + seed + ".csv");
+		if(file.exists()){
+			return file;
+		}
+
+		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: generating " + rows + " users in " + file);
+
+		File tmp = new File(directory, file.getName() + ".tmp");
+		Writer writer = writer(tmp);
+		try {
+			Random random = new Random(seed);
+			writer.write("firstName,age\n");
+			for(long i = 0; i < rows; i++){
+				writer.write(name(random));
+				writer.write(',');
+				writer.write(Integer.toString(age(random)));
+				writer.write('\n');
+			}
+		} finally {
+			writer.close();
+		}
+
+		return rename(tmp, file);
+	}
+
+	// XML dataset: one <person> element per user
+	public File xml() throws IOException {
+		File file = new File(directory, "users-" + rows + "-" + seed + ".xml");
+		if(file.exists()){
+			return file;
+		}
+
+		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: generating " + rows + " users in " + file);
+
+		File tmp = new File(directory, file.getName() + ".tmp");
+		Writer writer = writer(tmp);
+		try {
+			Random random = new Random(seed);
+			writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<records>\n");
+			for(long i = 0; i < rows; i++){
+				writer.write("\t<person>\n\t\t<firstName>");
+				writer.write(name(random));
+				writer.write("</firstName>\n\t\t<age>");
+				writer.write(Integer.toString(age(random)));
+				writer.write("</age>\n\t</person>\n");
+			}
+			writer.write("</records>\n");
+		} finally {
+			writer.close();
+		}
+
+		return rename(tmp, file);
+	}
+
+	// Database dataset: the user table (read by job2) and the empty user_out table (written by job2)
+	public DataSource database() throws SQLException {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource();
+
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUrl("jdbc:h2:file:" + new File(directory, "users-" + rows + "-" + seed).getAbsolutePath() + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+		dataSource.setUsername("sa");
+		dataSource.setPassword("");
+
+		Connection connection = dataSource.getConnection();
+		try {
+			Statement statement = connection.createStatement();
+			statement.execute("CREATE TABLE IF NOT EXISTS user (first_name VARCHAR(50), age INT)");
+			statement.execute("CREATE TABLE IF NOT EXISTS user_out (first_name VARCHAR(50), age INT)");
+
+			if(count(connection) != rows){
+				insertUsers(connection);
+			}
+		} finally {
+			connection.close();
+		}
+
+		return dataSource;
+	}
+
+	private long count(Connection connection) throws SQLException {
+		ResultSet resultSet = connection.createStatement().executeQuery("SELECT COUNT(*) FROM user");
+		resultSet.next();
+
+		return resultSet.getLong(1);
+	}
+
+	// Rows are committed by batches. An interrupted generation leaves a wrong row count, so the table is generated again next time
+	private void insertUsers(Connection connection) throws SQLException {
+		System.out.println(this.getClass().getSimpleName() + "." + new Exception().getStackTrace()[0].getMethodName() + ": INFO: generating " + rows + " users in the user table");
+
+		connection.createStatement().execute("TRUNCATE TABLE user");
+		connection.setAutoCommit(false);
+
+		PreparedStatement insert = connection.prepareStatement("INSERT INTO user (first_name, age) VALUES (?, ?)");
+		Random random = new Random(seed);
+		for(long i = 1; i <= rows; i++){
+			insert.setString(1, name(random));
+			insert.setInt(2, age(random));
+			insert.addBatch();
+
+			if(i % INSERT_BATCH_SIZE == 0){
+				insert.executeBatch();
+				connection.commit();
+			}
+		}
+		insert.executeBatch();
+
+		connection.commit();
+		connection.setAutoCommit(true);
+	}
+
+	private String name(Random random){
+		return NAMES[random.nextInt(NAMES.length)];
+	}
+
+	private int age(Random random){
+		return 18 + random.nextInt(70);
+	}
+
+	private Writer writer(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16);
+	}
+
+	private File rename(File tmp, File file) throws IOException {
+		if(!tmp.renameTo(file)){
+			throw new IOException("Can't rename " + tmp + " to " + file);
+		}
+		return file;
+	}
+}